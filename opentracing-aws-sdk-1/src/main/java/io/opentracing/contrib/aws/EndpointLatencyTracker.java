@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017-2019 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.aws;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps per endpoint latency and error rate statistics of traced requests. One instance can be
+ * shared between several clients (e.g. one client per region) to rank their endpoints.
+ *
+ * <p>Statistics of an endpoint which received no request for longer than the max age are stale:
+ * they describe its health at the time traffic stopped, e.g. after being routed away from.
+ */
+public class EndpointLatencyTracker {
+
+  public static final double DEFAULT_ALPHA = 0.2;
+  public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private final ConcurrentMap<String, EndpointStats> stats = new ConcurrentHashMap<>();
+  private final double alpha;
+  private final long maxAgeMillis;
+  private final LongSupplier millisClock;
+
+  public EndpointLatencyTracker() {
+    this(DEFAULT_ALPHA);
+  }
+
+  /**
+   * @param alpha weight of the newest sample, between 0 (exclusive) and 1 (inclusive)
+   */
+  public EndpointLatencyTracker(double alpha) {
+    this(alpha, DEFAULT_MAX_AGE_MILLIS);
+  }
+
+  /**
+   * @param alpha weight of the newest sample, between 0 (exclusive) and 1 (inclusive)
+   * @param maxAgeMillis time without requests after which statistics of an endpoint are stale
+   */
+  public EndpointLatencyTracker(double alpha, long maxAgeMillis) {
+    this(alpha, maxAgeMillis, System::currentTimeMillis);
+  }
+
+  EndpointLatencyTracker(double alpha, long maxAgeMillis, LongSupplier millisClock) {
+    if (!(alpha > 0.0 && alpha <= 1.0)) {
+      throw new IllegalArgumentException("alpha must be in (0, 1]: " + alpha);
+    }
+    if (maxAgeMillis <= 0) {
+      throw new IllegalArgumentException("maxAgeMillis must be positive: " + maxAgeMillis);
+    }
+    this.alpha = alpha;
+    this.maxAgeMillis = maxAgeMillis;
+    this.millisClock = millisClock;
+  }
+
+  /**
+   * Records a completed request.
+   *
+   * @param endpoint endpoint in host:port form
+   * @param region region of the request, may be null
+   * @param latencyNanos duration of the request in nanoseconds
+   * @param error whether the request failed
+   */
+  public void record(String endpoint, String region, long latencyNanos, boolean error) {
+    EndpointStats endpointStats = stats.get(endpoint);
+    if (endpointStats == null) {
+      endpointStats = stats.computeIfAbsent(endpoint, key -> new EndpointStats(key, alpha));
+    }
+    endpointStats.record(region, latencyNanos, error, millisClock.getAsLong());
+  }
+
+  /**
+   * @param endpoint endpoint in host:port form
+   * @return statistics of the endpoint or null if no request was recorded for it
+   */
+  public EndpointStats getStats(String endpoint) {
+    return stats.get(endpoint);
+  }
+
+  /**
+   * @param endpointStats statistics of an endpoint
+   * @return true if no request was recorded for the endpoint within the max age
+   */
+  public boolean isStale(EndpointStats endpointStats) {
+    return millisClock.getAsLong() - endpointStats.getLastUpdatedMillis() > maxAgeMillis;
+  }
+
+  /**
+   * Ranks fresh endpoints by {@link EndpointStats#getScore() score}, best first, followed by
+   * {@link #isStale(EndpointStats) stale} ones, least recently updated first. The score of a stale
+   * endpoint no longer reflects its health, so it never outranks a fresh one, and the oldest is
+   * the first candidate to probe again.
+   *
+   * @return statistics of all known endpoints
+   */
+  public List<EndpointStats> rankedEndpoints() {
+    // scores and update times keep changing while sorting, so compare a snapshot of them
+    final long nowMillis = millisClock.getAsLong();
+    Map<EndpointStats, Double> scores = new IdentityHashMap<>();
+    Map<EndpointStats, Long> updates = new IdentityHashMap<>();
+    List<EndpointStats> ranked = new ArrayList<>();
+    List<EndpointStats> stale = new ArrayList<>();
+    for (EndpointStats endpointStats : stats.values()) {
+      final long lastUpdatedMillis = endpointStats.getLastUpdatedMillis();
+      if (nowMillis - lastUpdatedMillis > maxAgeMillis) {
+        updates.put(endpointStats, lastUpdatedMillis);
+        stale.add(endpointStats);
+      } else {
+        scores.put(endpointStats, endpointStats.getScore());
+        ranked.add(endpointStats);
+      }
+    }
+    ranked.sort(Comparator.comparingDouble(scores::get));
+    stale.sort(Comparator.comparingLong(updates::get));
+    ranked.addAll(stale);
+    return ranked;
+  }
+}
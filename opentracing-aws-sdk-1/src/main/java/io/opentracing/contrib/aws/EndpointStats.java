@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017-2019 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.aws;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exponentially weighted latency and error rate of a single endpoint. All updates are lock-free.
+ */
+public class EndpointStats {
+
+  private static final double MIN_SUCCESS_RATE = 0.01;
+
+  private final String endpoint;
+  private final Ewma latencyNanos;
+  private final Ewma errorRate;
+  private final AtomicLong count = new AtomicLong();
+  private volatile String region;
+  private volatile long lastUpdatedMillis;
+
+  EndpointStats(String endpoint, double alpha) {
+    this.endpoint = endpoint;
+    this.latencyNanos = new Ewma(alpha);
+    this.errorRate = new Ewma(alpha);
+  }
+
+  void record(String region, long latencyNanos, boolean error, long nowMillis) {
+    if (region != null) {
+      this.region = region;
+    }
+    this.latencyNanos.update(latencyNanos);
+    this.errorRate.update(error ? 1.0 : 0.0);
+    count.incrementAndGet();
+    lastUpdatedMillis = nowMillis;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  /**
+   * @return region of the last request sent to this endpoint or null if unknown
+   */
+  public String getRegion() {
+    return region;
+  }
+
+  /**
+   * @return number of requests recorded for this endpoint
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @return time of the last recorded request in milliseconds since the epoch
+   */
+  public long getLastUpdatedMillis() {
+    return lastUpdatedMillis;
+  }
+
+  /**
+   * @return weighted average latency in milliseconds
+   */
+  public double getLatencyMillis() {
+    return latencyNanos.get() / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  /**
+   * @return weighted error rate between 0 and 1
+   */
+  public double getErrorRate() {
+    return errorRate.get();
+  }
+
+  /**
+   * Expected latency of a successful call when failed calls are retried, i.e. the weighted latency
+   * divided by the weighted success rate. Lower is better.
+   *
+   * @return routing score in milliseconds
+   */
+  public double getScore() {
+    return getLatencyMillis() / Math.max(1.0 - getErrorRate(), MIN_SUCCESS_RATE);
+  }
+
+  @Override
+  public String toString() {
+    return "EndpointStats{endpoint=" + endpoint
+        + ", region=" + region
+        + ", count=" + getCount()
+        + ", latencyMillis=" + getLatencyMillis()
+        + ", errorRate=" + getErrorRate()
+        + ", lastUpdatedMillis=" + lastUpdatedMillis
+        + '}';
+  }
+}
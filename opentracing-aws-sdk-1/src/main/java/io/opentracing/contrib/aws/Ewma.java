@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017-2019 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.aws;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free exponentially weighted moving average. The first sample is taken as is.
+ */
+class Ewma {
+
+  private static final long UNSET = Double.doubleToRawLongBits(Double.NaN);
+
+  private final double alpha;
+  private final AtomicLong value = new AtomicLong(UNSET);
+
+  Ewma(double alpha) {
+    this.alpha = alpha;
+  }
+
+  void update(double sample) {
+    long current;
+    long next;
+    do {
+      current = value.get();
+      double average = Double.longBitsToDouble(current);
+      next = Double.doubleToRawLongBits(
+          Double.isNaN(average) ? sample : average + alpha * (sample - average));
+    } while (!value.compareAndSet(current, next));
+  }
+
+  boolean isSet() {
+    return value.get() != UNSET;
+  }
+
+  /**
+   * @return current average or 0 if there was no sample yet
+   */
+  double get() {
+    double average = Double.longBitsToDouble(value.get());
+    return Double.isNaN(average) ? 0.0 : average;
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017-2019 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.aws;
+
+import com.amazonaws.services.lambda.model.InvokeRequest;
+import com.amazonaws.services.lambda.model.InvokeResult;
+import io.opentracing.Span;
+import io.opentracing.tag.BooleanTag;
+import io.opentracing.tag.IntTag;
+import io.opentracing.tag.StringTag;
+import io.opentracing.tag.Tags;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Decorates spans of Lambda Invoke calls. The Lambda client is optional, callers must compare
+ * class names with {@link #INVOKE_REQUEST} and {@link #INVOKE_RESULT} before calling this class.
+ */
+class LambdaSpanDecorator {
+
+  static final String INVOKE_REQUEST = "com.amazonaws.services.lambda.model.InvokeRequest";
+  static final String INVOKE_RESULT = "com.amazonaws.services.lambda.model.InvokeResult";
+
+  static final StringTag FUNCTION_NAME = new StringTag("aws.lambda.function_name");
+  static final StringTag QUALIFIER = new StringTag("aws.lambda.qualifier");
+  static final StringTag INVOCATION_TYPE = new StringTag("aws.lambda.invocation_type");
+  static final IntTag REQUEST_PAYLOAD_SIZE = new IntTag("aws.lambda.request_payload_size");
+  static final IntTag RESPONSE_PAYLOAD_SIZE = new IntTag("aws.lambda.response_payload_size");
+  static final IntTag STATUS_CODE = new IntTag("aws.lambda.status_code");
+  static final StringTag FUNCTION_ERROR = new StringTag("aws.lambda.function_error");
+  static final StringTag EXECUTED_VERSION = new StringTag("aws.lambda.executed_version");
+  static final String DURATION = "aws.lambda.duration_ms";
+  static final String BILLED_DURATION = "aws.lambda.billed_duration_ms";
+  static final String INIT_DURATION = "aws.lambda.init_duration_ms";
+  static final String MAX_MEMORY_USED = "aws.lambda.max_memory_used_mb";
+  static final BooleanTag COLD_START = new BooleanTag("aws.lambda.cold_start");
+
+  static void onRequest(Object originalRequest, Span span) {
+    final InvokeRequest request = (InvokeRequest) originalRequest;
+    FUNCTION_NAME.set(span, request.getFunctionName());
+    if (request.getQualifier() != null) {
+      QUALIFIER.set(span, request.getQualifier());
+    }
+    // Lambda defaults to synchronous RequestResponse invocation
+    INVOCATION_TYPE.set(span,
+        request.getInvocationType() != null ? request.getInvocationType() : "RequestResponse");
+    REQUEST_PAYLOAD_SIZE.set(span, size(request.getPayload()));
+  }
+
+  static void onResponse(Object awsResponse, Span span) {
+    final InvokeResult result = (InvokeResult) awsResponse;
+    if (result.getStatusCode() != null) {
+      STATUS_CODE.set(span, result.getStatusCode());
+    }
+    RESPONSE_PAYLOAD_SIZE.set(span, size(result.getPayload()));
+    if (result.getExecutedVersion() != null) {
+      EXECUTED_VERSION.set(span, result.getExecutedVersion());
+    }
+    if (result.getFunctionError() != null) {
+      Tags.ERROR.set(span, Boolean.TRUE);
+      FUNCTION_ERROR.set(span, result.getFunctionError());
+    }
+    // only returned when the caller asked for it with LogType Tail
+    if (result.getLogResult() != null) {
+      onLogResult(result.getLogResult(), span);
+    }
+  }
+
+  /**
+   * Tags the span with the fields of the REPORT line of a base64 encoded log tail.
+   */
+  static void onLogResult(String logResult, Span span) {
+    final String log;
+    try {
+      log = new String(Base64.getDecoder().decode(logResult), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      return;
+    }
+
+    for (String line : log.split("\n")) {
+      if (!line.startsWith("REPORT ")) {
+        continue;
+      }
+      // REPORT RequestId: id\tDuration: 1.23 ms\tBilled Duration: 100 ms\t...
+      for (String field : line.split("\t")) {
+        final int separator = field.indexOf(": ");
+        if (separator < 0) {
+          continue;
+        }
+        final String key = reportKey(field.substring(0, separator).trim());
+        if (key == null) {
+          continue;
+        }
+        final String value = field.substring(separator + 2).trim();
+        final int unit = value.indexOf(' ');
+        try {
+          span.setTag(key, Double.parseDouble(unit < 0 ? value : value.substring(0, unit)));
+        } catch (NumberFormatException ignore) {
+          // unknown format, skip the field
+        }
+      }
+      COLD_START.set(span, line.contains("Init Duration: "));
+      return;
+    }
+  }
+
+  private static String reportKey(String name) {
+    switch (name) {
+      case "Duration":
+        return DURATION;
+      case "Billed Duration":
+        return BILLED_DURATION;
+      case "Init Duration":
+        return INIT_DURATION;
+      case "Max Memory Used":
+        return MAX_MEMORY_USED;
+      default:
+        return null;
+    }
+  }
+
+  private static int size(ByteBuffer payload) {
+    return payload == null ? 0 : payload.remaining();
+  }
+}
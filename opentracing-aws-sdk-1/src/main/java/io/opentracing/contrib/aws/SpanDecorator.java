@@ -14,28 +14,77 @@
 package io.opentracing.contrib.aws;
 
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.Request;
 import com.amazonaws.Response;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.handlers.HandlerContextKey;
+import com.amazonaws.retry.RetryUtils;
 import io.opentracing.Span;
+import io.opentracing.tag.StringTag;
 import io.opentracing.tag.Tags;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
 
 class SpanDecorator {
 
   static final String COMPONENT_NAME = "java-aws-sdk";
+  static final StringTag AWS_REGION = new StringTag("aws.region");
+  static final StringTag AWS_ENDPOINT = new StringTag("aws.endpoint");
 
   static void onRequest(Request request, Span span) {
     Tags.COMPONENT.set(span, COMPONENT_NAME);
     Tags.HTTP_METHOD.set(span, request.getHttpMethod().name());
     Tags.HTTP_URL.set(span, request.getEndpoint().toString());
     Tags.PEER_SERVICE.set(span, request.getServiceName());
+    AWS_ENDPOINT.set(span, endpoint(request));
+    final String region = region(request);
+    if (region != null) {
+      AWS_REGION.set(span, region);
+    }
+
+    final Object originalRequest = request.getOriginalRequest();
+    if (LambdaSpanDecorator.INVOKE_REQUEST.equals(originalRequest.getClass().getName())) {
+      LambdaSpanDecorator.onRequest(originalRequest, span);
+    }
+  }
+
+  static String endpoint(Request<?> request) {
+    final URI uri = request.getEndpoint();
+    int port = uri.getPort();
+    if (port < 0) {
+      port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+    return uri.getHost() + ":" + port;
+  }
+
+  static String region(Request<?> request) {
+    return request.getHandlerContext(HandlerContextKey.SIGNING_REGION);
+  }
+
+  /**
+   * Failures of the client or the endpoint count against its health. Requests rejected by the
+   * service with a 4xx error, other than throttling, don't.
+   */
+  static boolean isEndpointError(Throwable throwable) {
+    if (throwable instanceof AmazonServiceException) {
+      final AmazonServiceException exception = (AmazonServiceException) throwable;
+      return exception.getStatusCode() >= 500 || RetryUtils.isThrottlingException(exception);
+    }
+    return throwable instanceof SdkClientException;
   }
 
   static void onResponse(Response response, Span span) {
     Tags.HTTP_STATUS.set(span, response.getHttpResponse().getStatusCode());
+
+    final Object awsResponse = response.getAwsResponse();
+    if (awsResponse != null
+        && LambdaSpanDecorator.INVOKE_RESULT.equals(awsResponse.getClass().getName())) {
+      LambdaSpanDecorator.onResponse(awsResponse, span);
+    }
   }
 
   static void onError(Throwable throwable, Span span) {
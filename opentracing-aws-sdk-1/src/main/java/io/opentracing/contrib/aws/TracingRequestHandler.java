@@ -29,12 +29,22 @@ import io.opentracing.tag.Tags;
 public class TracingRequestHandler extends RequestHandler2 {
 
   private final HandlerContextKey<Span> contextKey = new HandlerContextKey<>("span");
+  private final HandlerContextKey<Long> startKey = new HandlerContextKey<>("startNanos");
+  private final HandlerContextKey<Boolean> sampledKey = new HandlerContextKey<>("sampled");
   private final SpanContext parentContext; // for Async Client
   private final Tracer tracer;
+  private final EndpointLatencyTracker latencyTracker;
+  private final AdaptiveSampler sampler;
 
   public TracingRequestHandler(Tracer tracer) {
-    this.parentContext = null;
-    this.tracer = tracer;
+    this(null, tracer, null, null);
+  }
+
+  /**
+   * @param latencyTracker tracker to record per endpoint latency and error rate to
+   */
+  public TracingRequestHandler(Tracer tracer, EndpointLatencyTracker latencyTracker) {
+    this(null, tracer, latencyTracker, null);
   }
 
   /**
@@ -44,8 +54,29 @@ public class TracingRequestHandler extends RequestHandler2 {
    * @param parentContext parent context
    */
   public TracingRequestHandler(SpanContext parentContext, Tracer tracer) {
+    this(parentContext, tracer, null, null);
+  }
+
+  /**
+   * @param parentContext parent context, may be null
+   * @param latencyTracker tracker to record per endpoint latency and error rate to, may be null
+   */
+  public TracingRequestHandler(SpanContext parentContext, Tracer tracer,
+      EndpointLatencyTracker latencyTracker) {
+    this(parentContext, tracer, latencyTracker, null);
+  }
+
+  /**
+   * @param parentContext parent context, may be null
+   * @param latencyTracker tracker to record per endpoint latency and error rate to, may be null
+   * @param sampler sampler to set the sampling priority of spans with, may be null
+   */
+  public TracingRequestHandler(SpanContext parentContext, Tracer tracer,
+      EndpointLatencyTracker latencyTracker, AdaptiveSampler sampler) {
     this.parentContext = parentContext;
     this.tracer = tracer;
+    this.latencyTracker = latencyTracker;
+    this.sampler = sampler;
   }
 
   /**
@@ -53,18 +84,29 @@ public class TracingRequestHandler extends RequestHandler2 {
    */
   @Override
   public void beforeRequest(Request<?> request) {
+    String operationName = request.getOriginalRequest().getClass().getSimpleName();
     Tracer.SpanBuilder spanBuilder = tracer
-        .buildSpan(request.getOriginalRequest().getClass().getSimpleName())
+        .buildSpan(operationName)
         .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT);
 
     if (parentContext != null) {
       spanBuilder.asChildOf(parentContext);
     }
 
+    // sampling.priority applies to the whole trace, child spans follow the upstream decision
+    if (sampler != null && parentContext == null && tracer.activeSpan() == null) {
+      boolean sampled = sampler.sample(request.getServiceName(), operationName);
+      spanBuilder.withTag(Tags.SAMPLING_PRIORITY, sampled ? 1 : 0);
+      request.addHandlerContext(sampledKey, sampled);
+    }
+
     Span span = spanBuilder.start();
     SpanDecorator.onRequest(request, span);
 
     request.addHandlerContext(contextKey, span);
+    if (latencyTracker != null || sampler != null) {
+      request.addHandlerContext(startKey, System.nanoTime());
+    }
   }
 
   /**
@@ -73,6 +115,7 @@ public class TracingRequestHandler extends RequestHandler2 {
   @Override
   public void afterResponse(Request<?> request, Response<?> response) {
     Span span = request.getHandlerContext(contextKey);
+    record(request, span, null);
     SpanDecorator.onResponse(response, span);
     span.finish();
   }
@@ -83,7 +126,33 @@ public class TracingRequestHandler extends RequestHandler2 {
   @Override
   public void afterError(Request<?> request, Response<?> response, Exception e) {
     Span span = request.getHandlerContext(contextKey);
+    record(request, span, e);
     SpanDecorator.onError(e, span);
     span.finish();
   }
+
+  /**
+   * Called before the span is decorated with the response or error: tracers may drop tags and logs
+   * of spans which are not sampled, so a call kept anyway must be marked as sampled first.
+   */
+  private void record(Request<?> request, Span span, Exception error) {
+    Long startNanos = request.getHandlerContext(startKey);
+    if (startNanos == null) {
+      return;
+    }
+    long latencyNanos = System.nanoTime() - startNanos;
+
+    if (latencyTracker != null) {
+      latencyTracker.record(SpanDecorator.endpoint(request), SpanDecorator.region(request),
+          latencyNanos, error != null && SpanDecorator.isEndpointError(error));
+    }
+
+    Boolean sampled = request.getHandlerContext(sampledKey);
+    // keep failed and unusually slow calls even if they were not sampled
+    if (sampled != null && sampler.record(request.getServiceName(),
+        request.getOriginalRequest().getClass().getSimpleName(), latencyNanos, error != null,
+        sampled)) {
+      Tags.SAMPLING_PRIORITY.set(span, 1);
+    }
+  }
 }
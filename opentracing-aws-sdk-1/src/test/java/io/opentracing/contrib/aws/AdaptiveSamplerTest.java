@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017-2019 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.aws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class AdaptiveSamplerTest {
+
+  private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final AtomicLong clock = new AtomicLong();
+  private final AdaptiveSampler sampler = new AdaptiveSampler(10, 0.001, clock::get);
+
+  @Test
+  public void budget_is_shared_between_operations() {
+    assertEquals(1.0, sampler.getProbability("DynamoDB", "GetItemRequest"), 0.0);
+
+    for (int i = 0; i < 5; i++) {
+      calls("GetItemRequest", 1000, MILLIS, false);
+      calls("QueryRequest", 1, 5 * MILLIS, false);
+      tick();
+    }
+    sampler.sample("DynamoDB", "QueryRequest");
+
+    // the rare operation keeps all its calls and leaves the rest of the budget, minus the share
+    // reserved for forced keeps
+    assertEquals(1.0, sampler.getProbability("DynamoDB", "QueryRequest"), 0.0);
+    assertEquals(0.008, sampler.getProbability("DynamoDB", "GetItemRequest"), 1e-9);
+  }
+
+  @Test
+  public void slow_operation_gets_a_larger_share() {
+    for (int i = 0; i < 5; i++) {
+      calls("GetItemRequest", 500, MILLIS, false);
+      calls("ScanRequest", 500, MILLIS, false);
+      tick();
+    }
+    sampler.sample("DynamoDB", "GetItemRequest");
+    assertEquals(0.009, sampler.getProbability("DynamoDB", "GetItemRequest"), 1e-9);
+    assertEquals(0.009, sampler.getProbability("DynamoDB", "ScanRequest"), 1e-9);
+
+    calls("GetItemRequest", 499, 10 * MILLIS, false);
+    calls("ScanRequest", 500, MILLIS, false);
+    tick();
+    sampler.sample("DynamoDB", "GetItemRequest");
+
+    // ten times slower gets ten times the share of the other operation, within the same budget
+    final double getItem = sampler.getProbability("DynamoDB", "GetItemRequest");
+    final double scan = sampler.getProbability("DynamoDB", "ScanRequest");
+    assertEquals(9.0 * 10 / 11 / 500, getItem, 1e-9);
+    assertEquals(9.0 / 11 / 500, scan, 1e-9);
+    assertTrue(getItem * 500 + scan * 500 <= 9.0 + 1e-9);
+  }
+
+  @Test
+  public void boost_ends_in_quiet_windows() {
+    for (int i = 0; i < 5; i++) {
+      calls("GetItemRequest", 500, MILLIS, false);
+      calls("ScanRequest", 500, MILLIS, false);
+      tick();
+    }
+    calls("GetItemRequest", 500, 10 * MILLIS, false);
+    calls("ScanRequest", 500, MILLIS, false);
+    tick();
+
+    // too few calls to compare with the baseline, still slow
+    calls("GetItemRequest", 10, 10 * MILLIS, false);
+    calls("ScanRequest", 500, MILLIS, false);
+    assertEquals(9.0 * 10 / 11 / 500, sampler.getProbability("DynamoDB", "GetItemRequest"), 1e-9);
+    tick();
+    sampler.sample("DynamoDB", "ScanRequest");
+
+    // both get an even share again, the quiet operation's rate is 0.3 * 10 + 0.7 * 500
+    assertEquals(4.5 / 353, sampler.getProbability("DynamoDB", "GetItemRequest"), 1e-9);
+    assertEquals(0.009, sampler.getProbability("DynamoDB", "ScanRequest"), 1e-9);
+  }
+
+  @Test
+  public void short_spikes_are_not_boosted() {
+    for (int i = 0; i < 5; i++) {
+      calls("GetItemRequest", 500, MILLIS, false);
+      calls("ScanRequest", 500, MILLIS, false);
+      tick();
+    }
+
+    // a few failed and slow calls at the end of an otherwise normal window
+    calls("GetItemRequest", 485, MILLIS, false);
+    calls("GetItemRequest", 5, MILLIS, true);
+    calls("GetItemRequest", 10, 10 * MILLIS, false);
+    calls("ScanRequest", 500, MILLIS, false);
+    tick();
+    sampler.sample("DynamoDB", "GetItemRequest");
+
+    assertEquals(0.009, sampler.getProbability("DynamoDB", "GetItemRequest"), 1e-9);
+    assertEquals(0.009, sampler.getProbability("DynamoDB", "ScanRequest"), 1e-9);
+  }
+
+  @Test
+  public void forced_keeps_are_limited() {
+    for (int i = 0; i < 5; i++) {
+      calls("GetItemRequest", 1000, MILLIS, false);
+      tick();
+    }
+
+    assertFalse(sampler.record("DynamoDB", "GetItemRequest", MILLIS, false, false));
+    assertFalse(sampler.record("DynamoDB", "GetItemRequest", 10 * MILLIS, false, true));
+    // 10% of a budget of 10 spans per second leaves room for one forced keep
+    assertTrue(sampler.record("DynamoDB", "GetItemRequest", 10 * MILLIS, false, false));
+    assertFalse(sampler.record("DynamoDB", "GetItemRequest", MILLIS, true, false));
+
+    tick();
+    sampler.sample("DynamoDB", "GetItemRequest");
+    assertTrue(sampler.record("DynamoDB", "GetItemRequest", MILLIS, true, false));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalid_target() {
+    new AdaptiveSampler(0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalid_min_probability() {
+    new AdaptiveSampler(10, 1.5);
+  }
+
+  private void calls(String operation, int count, long latencyNanos, boolean error) {
+    for (int i = 0; i < count; i++) {
+      sampler.sample("DynamoDB", operation);
+      sampler.record("DynamoDB", operation, latencyNanos, error, true);
+    }
+  }
+
+  private void tick() {
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017-2019 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.aws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class EndpointLatencyTrackerTest {
+
+  private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final AtomicLong clock = new AtomicLong(1_000_000L);
+  private final EndpointLatencyTracker latencyTracker =
+      new EndpointLatencyTracker(EndpointLatencyTracker.DEFAULT_ALPHA, 60_000L, clock::get);
+
+  @Test
+  public void ranks_by_score() {
+    latencyTracker.record("fast:443", "us-east-1", 10 * MILLIS, false);
+    latencyTracker.record("slow:443", "us-west-2", 50 * MILLIS, false);
+    latencyTracker.record("failing:443", "eu-west-1", 10 * MILLIS, true);
+
+    EndpointStats fast = latencyTracker.getStats("fast:443");
+    assertEquals(clock.get(), fast.getLastUpdatedMillis());
+    assertEquals(Arrays.asList(fast, latencyTracker.getStats("slow:443"),
+        latencyTracker.getStats("failing:443")), latencyTracker.rankedEndpoints());
+  }
+
+  @Test
+  public void stale_endpoints_are_ranked_last() {
+    latencyTracker.record("bad:443", "us-east-1", 10 * MILLIS, true);
+    clock.addAndGet(1000L);
+    latencyTracker.record("old:443", "us-east-1", MILLIS, false);
+    clock.addAndGet(30_000L);
+    latencyTracker.record("good:443", "us-west-2", 50 * MILLIS, false);
+
+    EndpointStats bad = latencyTracker.getStats("bad:443");
+    EndpointStats old = latencyTracker.getStats("old:443");
+    EndpointStats good = latencyTracker.getStats("good:443");
+    assertEquals(Arrays.asList(old, good, bad), latencyTracker.rankedEndpoints());
+
+    // no more traffic to bad and old, e.g. after routing away from them
+    clock.addAndGet(45_000L);
+    assertTrue(latencyTracker.isStale(bad));
+    assertTrue(latencyTracker.isStale(old));
+    assertFalse(latencyTracker.isStale(good));
+    // least recently updated first, regardless of the score
+    assertEquals(Arrays.asList(good, bad, old), latencyTracker.rankedEndpoints());
+
+    // a new request makes the endpoint fresh and its score count again
+    latencyTracker.record("bad:443", "us-east-1", 5 * MILLIS, false);
+    assertFalse(latencyTracker.isStale(bad));
+    assertEquals(Arrays.asList(bad, good, old), latencyTracker.rankedEndpoints());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalid_max_age() {
+    new EndpointLatencyTracker(EndpointLatencyTracker.DEFAULT_ALPHA, 0);
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017-2019 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.aws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.Response;
+import com.amazonaws.http.HttpResponse;
+import com.amazonaws.services.lambda.model.InvokeRequest;
+import com.amazonaws.services.lambda.model.InvokeResult;
+import com.amazonaws.services.lambda.model.ListFunctionsRequest;
+import com.amazonaws.services.lambda.model.ListFunctionsResult;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.tag.Tags;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class LambdaSpanDecoratorTest {
+
+  private static final String REPORT = "START RequestId: 1 Version: $LATEST\n"
+      + "END RequestId: 1\n"
+      + "REPORT RequestId: 1\tDuration: 12.34 ms\tBilled Duration: 100 ms\t"
+      + "Memory Size: 128 MB\tMax Memory Used: 70 MB\tInit Duration: 120.5 ms\t\n";
+
+  private final MockTracer mockTracer = new MockTracer();
+
+  @Test
+  public void invoke() {
+    assertEquals(LambdaSpanDecorator.INVOKE_REQUEST, InvokeRequest.class.getName());
+    assertEquals(LambdaSpanDecorator.INVOKE_RESULT, InvokeResult.class.getName());
+
+    MockSpan span = mockTracer.buildSpan("invoke").start();
+    LambdaSpanDecorator.onRequest(new InvokeRequest()
+        .withFunctionName("function")
+        .withPayload("{\"key\":1}"), span);
+    LambdaSpanDecorator.onResponse(new InvokeResult()
+        .withStatusCode(200)
+        .withExecutedVersion("$LATEST")
+        .withFunctionError("Unhandled")
+        .withPayload(ByteBuffer.wrap("{}".getBytes(StandardCharsets.UTF_8)))
+        .withLogResult(Base64.getEncoder().encodeToString(
+            REPORT.getBytes(StandardCharsets.UTF_8))), span);
+    span.finish();
+
+    Map<String, Object> tags = span.tags();
+    assertEquals("function", tags.get("aws.lambda.function_name"));
+    assertEquals("RequestResponse", tags.get("aws.lambda.invocation_type"));
+    assertEquals(9, tags.get("aws.lambda.request_payload_size"));
+    assertEquals(2, tags.get("aws.lambda.response_payload_size"));
+    assertEquals(200, tags.get("aws.lambda.status_code"));
+    assertEquals("$LATEST", tags.get("aws.lambda.executed_version"));
+    assertEquals("Unhandled", tags.get("aws.lambda.function_error"));
+    assertEquals(true, tags.get(Tags.ERROR.getKey()));
+    assertEquals(12.34, tags.get("aws.lambda.duration_ms"));
+    assertEquals(100.0, tags.get("aws.lambda.billed_duration_ms"));
+    assertEquals(120.5, tags.get("aws.lambda.init_duration_ms"));
+    assertEquals(70.0, tags.get("aws.lambda.max_memory_used_mb"));
+    assertEquals(true, tags.get("aws.lambda.cold_start"));
+  }
+
+  @Test
+  public void invoke_through_handler() {
+    InvokeRequest invokeRequest = new InvokeRequest()
+        .withFunctionName("function")
+        .withInvocationType("Event")
+        .withPayload("{}");
+    InvokeResult invokeResult = new InvokeResult()
+        .withStatusCode(202)
+        .withPayload(ByteBuffer.allocate(0));
+
+    MockSpan span = execute(invokeRequest, invokeResult);
+
+    Map<String, Object> tags = span.tags();
+    assertEquals("InvokeRequest", span.operationName());
+    assertEquals("function", tags.get("aws.lambda.function_name"));
+    assertEquals("Event", tags.get("aws.lambda.invocation_type"));
+    assertEquals(2, tags.get("aws.lambda.request_payload_size"));
+    assertEquals(0, tags.get("aws.lambda.response_payload_size"));
+    assertEquals(202, tags.get("aws.lambda.status_code"));
+  }
+
+  @Test
+  public void other_request_through_handler() {
+    MockSpan span = execute(new ListFunctionsRequest(), new ListFunctionsResult());
+
+    assertEquals("ListFunctionsRequest", span.operationName());
+    for (String key : span.tags().keySet()) {
+      assertFalse(key, key.startsWith("aws.lambda."));
+    }
+  }
+
+  @Test
+  public void invalid_log_result() {
+    MockSpan span = mockTracer.buildSpan("invoke").start();
+    LambdaSpanDecorator.onLogResult("not base64!", span);
+    LambdaSpanDecorator.onLogResult(Base64.getEncoder().encodeToString(
+        "REPORT RequestId: 1\tDuration: n/a".getBytes(StandardCharsets.UTF_8)), span);
+    span.finish();
+
+    assertNull(span.tags().get("aws.lambda.duration_ms"));
+    assertFalse((Boolean) span.tags().get("aws.lambda.cold_start"));
+  }
+
+  private MockSpan execute(AmazonWebServiceRequest originalRequest, Object result) {
+    DefaultRequest<?> request = new DefaultRequest<>(originalRequest, "AWSLambda");
+    request.setEndpoint(URI.create("https://lambda.us-west-2.amazonaws.com"));
+    HttpResponse httpResponse = new HttpResponse(request, null);
+    httpResponse.setStatusCode(200);
+
+    TracingRequestHandler handler = new TracingRequestHandler(mockTracer);
+    handler.beforeRequest(request);
+    handler.afterResponse(request, new Response<>(result, httpResponse));
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    assertEquals(1, spans.size());
+    return spans.get(0);
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2017-2019 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.aws;
+
+import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.tag.Tag;
+import io.opentracing.tag.Tags;
+import java.util.Map;
+
+/**
+ * Like tracers which only record sampled traces, drops tags and logs set on a span while its
+ * sampling priority is 0. Spans are recorded by the wrapped {@link MockTracer}.
+ */
+class SamplingTracer implements Tracer {
+
+  private final MockTracer tracer;
+
+  SamplingTracer(MockTracer tracer) {
+    this.tracer = tracer;
+  }
+
+  @Override
+  public ScopeManager scopeManager() {
+    return tracer.scopeManager();
+  }
+
+  @Override
+  public Span activeSpan() {
+    return tracer.activeSpan();
+  }
+
+  @Override
+  public Scope activateSpan(Span span) {
+    return tracer.activateSpan(span instanceof SamplingSpan ? ((SamplingSpan) span).span : span);
+  }
+
+  @Override
+  public SpanBuilder buildSpan(String operationName) {
+    return new SamplingSpanBuilder(tracer.buildSpan(operationName));
+  }
+
+  @Override
+  public <C> void inject(SpanContext spanContext, Format<C> format, C carrier) {
+    tracer.inject(spanContext, format, carrier);
+  }
+
+  @Override
+  public <C> SpanContext extract(Format<C> format, C carrier) {
+    return tracer.extract(format, carrier);
+  }
+
+  @Override
+  public void close() {
+    tracer.close();
+  }
+
+  private static boolean isPriority(String key) {
+    return Tags.SAMPLING_PRIORITY.getKey().equals(key);
+  }
+
+  private static class SamplingSpanBuilder implements SpanBuilder {
+
+    private final SpanBuilder builder;
+    private boolean sampled = true;
+
+    private SamplingSpanBuilder(SpanBuilder builder) {
+      this.builder = builder;
+    }
+
+    @Override
+    public SpanBuilder asChildOf(SpanContext parent) {
+      builder.asChildOf(parent);
+      return this;
+    }
+
+    @Override
+    public SpanBuilder asChildOf(Span parent) {
+      builder.asChildOf(parent == null ? null : parent.context());
+      return this;
+    }
+
+    @Override
+    public SpanBuilder addReference(String referenceType, SpanContext referencedContext) {
+      builder.addReference(referenceType, referencedContext);
+      return this;
+    }
+
+    @Override
+    public SpanBuilder ignoreActiveSpan() {
+      builder.ignoreActiveSpan();
+      return this;
+    }
+
+    @Override
+    public SpanBuilder withTag(String key, String value) {
+      builder.withTag(key, value);
+      return this;
+    }
+
+    @Override
+    public SpanBuilder withTag(String key, boolean value) {
+      builder.withTag(key, value);
+      return this;
+    }
+
+    @Override
+    public SpanBuilder withTag(String key, Number value) {
+      if (isPriority(key)) {
+        sampled = value.intValue() > 0;
+      }
+      builder.withTag(key, value);
+      return this;
+    }
+
+    @Override
+    public <T> SpanBuilder withTag(Tag<T> tag, T value) {
+      if (isPriority(tag.getKey())) {
+        sampled = ((Number) value).intValue() > 0;
+      }
+      builder.withTag(tag, value);
+      return this;
+    }
+
+    @Override
+    public SpanBuilder withStartTimestamp(long microseconds) {
+      builder.withStartTimestamp(microseconds);
+      return this;
+    }
+
+    @Override
+    public Span start() {
+      return new SamplingSpan(builder.start(), sampled);
+    }
+  }
+
+  private static class SamplingSpan implements Span {
+
+    private final Span span;
+    private boolean sampled;
+
+    private SamplingSpan(Span span, boolean sampled) {
+      this.span = span;
+      this.sampled = sampled;
+    }
+
+    @Override
+    public SpanContext context() {
+      return span.context();
+    }
+
+    @Override
+    public Span setTag(String key, String value) {
+      if (sampled) {
+        span.setTag(key, value);
+      }
+      return this;
+    }
+
+    @Override
+    public Span setTag(String key, boolean value) {
+      if (sampled) {
+        span.setTag(key, value);
+      }
+      return this;
+    }
+
+    @Override
+    public Span setTag(String key, Number value) {
+      if (isPriority(key)) {
+        sampled = value.intValue() > 0;
+        span.setTag(key, value);
+      } else if (sampled) {
+        span.setTag(key, value);
+      }
+      return this;
+    }
+
+    @Override
+    public <T> Span setTag(Tag<T> tag, T value) {
+      if (isPriority(tag.getKey())) {
+        sampled = ((Number) value).intValue() > 0;
+        span.setTag(tag, value);
+      } else if (sampled) {
+        span.setTag(tag, value);
+      }
+      return this;
+    }
+
+    @Override
+    public Span log(Map<String, ?> fields) {
+      if (sampled) {
+        span.log(fields);
+      }
+      return this;
+    }
+
+    @Override
+    public Span log(long timestampMicroseconds, Map<String, ?> fields) {
+      if (sampled) {
+        span.log(timestampMicroseconds, fields);
+      }
+      return this;
+    }
+
+    @Override
+    public Span log(String event) {
+      if (sampled) {
+        span.log(event);
+      }
+      return this;
+    }
+
+    @Override
+    public Span log(long timestampMicroseconds, String event) {
+      if (sampled) {
+        span.log(timestampMicroseconds, event);
+      }
+      return this;
+    }
+
+    @Override
+    public Span setBaggageItem(String key, String value) {
+      span.setBaggageItem(key, value);
+      return this;
+    }
+
+    @Override
+    public String getBaggageItem(String key) {
+      return span.getBaggageItem(key);
+    }
+
+    @Override
+    public Span setOperationName(String operationName) {
+      span.setOperationName(operationName);
+      return this;
+    }
+
+    @Override
+    public void finish() {
+      span.finish();
+    }
+
+    @Override
+    public void finish(long finishMicros) {
+      span.finish(finishMicros);
+    }
+  }
+}
@@ -14,9 +14,14 @@
 package io.opentracing.contrib.aws;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.DefaultRequest;
+import com.amazonaws.SdkClientException;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.client.builder.AwsClientBuilder;
@@ -37,6 +42,7 @@ import io.opentracing.Scope;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
 import io.opentracing.tag.Tags;
+import java.net.URI;
 import java.util.List;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -80,6 +86,104 @@ public class TracingRequestHandlerTest {
     assertNull(mockTracer.activeSpan());
   }
 
+  @Test
+  public void endpoint_latency() {
+    EndpointLatencyTracker latencyTracker = new EndpointLatencyTracker();
+    AmazonDynamoDB dbClient = buildClient(new TracingRequestHandler(mockTracer, latencyTracker));
+    createTable(dbClient, "latency-1");
+    createTable(dbClient, "latency-1");
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    assertEquals(2, spans.size());
+    assertEquals("localhost:8000", spans.get(0).tags().get("aws.endpoint"));
+    assertEquals("us-west-2", spans.get(0).tags().get("aws.region"));
+
+    EndpointStats stats = latencyTracker.getStats("localhost:8000");
+    assertEquals(2, stats.getCount());
+    assertEquals("us-west-2", stats.getRegion());
+    assertTrue(stats.getLatencyMillis() > 0);
+    // the second CreateTable is rejected with ResourceInUseException, not an endpoint failure
+    assertEquals(0.0, stats.getErrorRate(), 0.0);
+    assertEquals(1, latencyTracker.rankedEndpoints().size());
+  }
+
+  @Test
+  public void endpoint_errors() {
+    AmazonServiceException resourceInUse = new AmazonServiceException("in use");
+    resourceInUse.setStatusCode(400);
+    resourceInUse.setErrorCode("ResourceInUseException");
+    assertFalse(SpanDecorator.isEndpointError(resourceInUse));
+
+    AmazonServiceException throttling = new AmazonServiceException("throttled");
+    throttling.setStatusCode(400);
+    throttling.setErrorCode("ThrottlingException");
+    assertTrue(SpanDecorator.isEndpointError(throttling));
+
+    AmazonServiceException unavailable = new AmazonServiceException("unavailable");
+    unavailable.setStatusCode(503);
+    assertTrue(SpanDecorator.isEndpointError(unavailable));
+
+    assertTrue(SpanDecorator.isEndpointError(new SdkClientException("connection refused")));
+    assertFalse(SpanDecorator.isEndpointError(new IllegalStateException()));
+  }
+
+  @Test
+  public void endpoint_default_port() {
+    DefaultRequest<?> request = new DefaultRequest<>("AmazonDynamoDBv2");
+    request.setEndpoint(URI.create("https://dynamodb.us-west-2.amazonaws.com"));
+    assertEquals("dynamodb.us-west-2.amazonaws.com:443", SpanDecorator.endpoint(request));
+
+    request.setEndpoint(URI.create("http://dynamodb.us-west-2.amazonaws.com"));
+    assertEquals("dynamodb.us-west-2.amazonaws.com:80", SpanDecorator.endpoint(request));
+  }
+
+  @Test
+  public void adaptive_sampling() {
+    AmazonDynamoDB dbClient = buildClient(
+        new TracingRequestHandler(null, mockTracer, null, new AdaptiveSampler(1000)));
+    createTable(dbClient, "sampled-1");
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    assertEquals(1, spans.size());
+    assertEquals(1, spans.get(0).tags().get(Tags.SAMPLING_PRIORITY.getKey()));
+  }
+
+  @Test
+  public void adaptive_sampling_with_parent() {
+    final MockSpan parent = mockTracer.buildSpan("parent").start();
+    AmazonDynamoDB dbClient = buildClient(
+        new TracingRequestHandler(parent.context(), mockTracer, null, new AdaptiveSampler(1000)));
+    createTable(dbClient, "sampled-with-parent-1");
+    parent.finish();
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    assertEquals(2, spans.size());
+    assertNull(spans.get(0).tags().get(Tags.SAMPLING_PRIORITY.getKey()));
+  }
+
+  @Test
+  public void adaptive_sampling_keeps_failed_calls() {
+    AdaptiveSampler sampler = new AdaptiveSampler(1000) {
+      @Override
+      public boolean sample(String service, String operation) {
+        return false;
+      }
+    };
+    AmazonDynamoDB dbClient = buildClient(
+        new TracingRequestHandler(null, new SamplingTracer(mockTracer), null, sampler));
+    createTable(dbClient, "kept-1");
+    createTable(dbClient, "kept-1");
+
+    List<MockSpan> spans = mockTracer.finishedSpans();
+    assertEquals(2, spans.size());
+    assertEquals(0, spans.get(0).tags().get(Tags.SAMPLING_PRIORITY.getKey()));
+    assertNull(spans.get(0).tags().get(Tags.HTTP_STATUS.getKey()));
+    // the failed call is kept before the error is tagged, so the error is not dropped
+    assertEquals(1, spans.get(1).tags().get(Tags.SAMPLING_PRIORITY.getKey()));
+    assertEquals(Boolean.TRUE, spans.get(1).tags().get(Tags.ERROR.getKey()));
+    assertEquals(1, spans.get(1).logEntries().size());
+  }
+
   @Test
   public void two_requests() {
     AmazonDynamoDB dbClient = buildClient();
@@ -191,6 +295,10 @@ public class TracingRequestHandlerTest {
   }
 
   private AmazonDynamoDB buildClient() {
+    return buildClient(new TracingRequestHandler(mockTracer));
+  }
+
+  private AmazonDynamoDB buildClient(TracingRequestHandler handler) {
     AwsClientBuilder.EndpointConfiguration endpointConfiguration =
         new AwsClientBuilder.EndpointConfiguration("http://localhost:8000", "us-west-2");
 
@@ -199,7 +307,7 @@ public class TracingRequestHandlerTest {
     return AmazonDynamoDBClientBuilder.standard()
         .withEndpointConfiguration(endpointConfiguration)
         .withCredentials(new AWSStaticCredentialsProvider(awsCreds))
-        .withRequestHandlers(new TracingRequestHandler(mockTracer)).build();
+        .withRequestHandlers(handler).build();
   }
 
   private AmazonDynamoDBAsync buildAsyncClient() {
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2017-2019 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.aws2;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Samples calls per service operation to stay within a target number of spans per second.
+ *
+ * <p>Once per second the budget is split max-min fairly between active operations, so high volume
+ * operations don't crowd out rare ones. Operations whose recent latency or error rate deviates
+ * from their baseline get a proportionally larger share of the same budget. A share of it is
+ * reserved for failed and unusually slow calls, which are kept even if they were not sampled.
+ * All updates are lock-free.
+ */
+public class AdaptiveSampler {
+
+  public static final double DEFAULT_MIN_PROBABILITY = 0.001;
+
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+  // per window, so rates and baselines adapt over seconds regardless of the call volume
+  private static final double RATE_ALPHA = 0.3;
+  private static final double BASELINE_ALPHA = 0.05;
+  // recent behaviour is aggregated over windows until it covers at least this many calls
+  private static final long MIN_RECENT_CALLS = 20;
+  // operations called less often than this don't take a share of the budget
+  private static final double MIN_ACTIVE_RATE = 0.01;
+  // ratio of recent to baseline behaviour from which operations get a larger share
+  private static final double DEVIATION_THRESHOLD = 2.0;
+  private static final double MAX_WEIGHT = 10.0;
+  // keeps error rate ratios finite while the baseline has no errors, so that it takes an error
+  // rate 10 points above the baseline to reach the threshold
+  private static final double ERROR_RATE_FLOOR = 0.1;
+  // share of the budget reserved for failed and slow calls kept regardless of sampling
+  private static final double FORCED_SHARE = 0.1;
+  // forced keep tokens are counted in millionths
+  private static final long TOKEN = 1_000_000L;
+
+  private final ConcurrentMap<String, OperationStats> operations = new ConcurrentHashMap<>();
+  private final double targetSpansPerSecond;
+  private final double minProbability;
+  private final LongSupplier nanoClock;
+  private final AtomicLong windowStart;
+  private final long forcedTokensPerWindow;
+  private final long forcedTokensCapacity;
+  private final AtomicLong forcedTokens;
+
+  /**
+   * @param targetSpansPerSecond number of sampled spans per second to aim for
+   */
+  public AdaptiveSampler(double targetSpansPerSecond) {
+    this(targetSpansPerSecond, DEFAULT_MIN_PROBABILITY);
+  }
+
+  /**
+   * @param targetSpansPerSecond number of sampled spans per second to aim for
+   * @param minProbability lowest sampling probability of an operation
+   */
+  public AdaptiveSampler(double targetSpansPerSecond, double minProbability) {
+    this(targetSpansPerSecond, minProbability, System::nanoTime);
+  }
+
+  AdaptiveSampler(double targetSpansPerSecond, double minProbability, LongSupplier nanoClock) {
+    if (!(targetSpansPerSecond > 0.0)) {
+      throw new IllegalArgumentException(
+          "targetSpansPerSecond must be positive: " + targetSpansPerSecond);
+    }
+    if (!(minProbability >= 0.0 && minProbability <= 1.0)) {
+      throw new IllegalArgumentException("minProbability must be in [0, 1]: " + minProbability);
+    }
+    this.targetSpansPerSecond = targetSpansPerSecond;
+    this.minProbability = minProbability;
+    this.nanoClock = nanoClock;
+    this.windowStart = new AtomicLong(nanoClock.getAsLong());
+    this.forcedTokensPerWindow = (long) (targetSpansPerSecond * FORCED_SHARE * TOKEN);
+    this.forcedTokensCapacity = Math.max(TOKEN, forcedTokensPerWindow);
+    this.forcedTokens = new AtomicLong(forcedTokensCapacity);
+  }
+
+  /**
+   * Decides whether a new call should be sampled.
+   *
+   * @param service service name
+   * @param operation operation name
+   * @return true if the call should be sampled
+   */
+  public boolean sample(String service, String operation) {
+    maybeAdapt();
+    final OperationStats stats = stats(service, operation);
+    stats.calls.incrementAndGet();
+    final double probability = stats.probability;
+    return probability >= 1.0 || ThreadLocalRandom.current().nextDouble() < probability;
+  }
+
+  /**
+   * Records a completed call, sampled or not.
+   *
+   * @param service service name
+   * @param operation operation name
+   * @param latencyNanos duration of the call in nanoseconds
+   * @param error whether the call failed
+   * @param sampled whether the call was sampled
+   * @return true if the call was not sampled but failed or was much slower than usual and should
+   * be kept anyway, limited to the reserved share of the budget
+   */
+  public boolean record(String service, String operation, long latencyNanos, boolean error,
+      boolean sampled) {
+    final OperationStats stats = stats(service, operation);
+    final boolean slow = stats.baselineLatency.isSet()
+        && latencyNanos > DEVIATION_THRESHOLD * stats.baselineLatency.get();
+    stats.latencySum.addAndGet(latencyNanos);
+    if (error) {
+      stats.errors.incrementAndGet();
+    }
+    stats.recorded.incrementAndGet();
+    return !sampled && (error || slow) && tryForceKeep();
+  }
+
+  private boolean tryForceKeep() {
+    long tokens;
+    do {
+      tokens = forcedTokens.get();
+      if (tokens < TOKEN) {
+        return false;
+      }
+    } while (!forcedTokens.compareAndSet(tokens, tokens - TOKEN));
+    return true;
+  }
+
+  /**
+   * @param service service name
+   * @param operation operation name
+   * @return current sampling probability of the operation
+   */
+  public double getProbability(String service, String operation) {
+    final OperationStats stats = operations.get(key(service, operation));
+    return stats == null ? 1.0 : stats.probability;
+  }
+
+  private OperationStats stats(String service, String operation) {
+    final String key = key(service, operation);
+    final OperationStats stats = operations.get(key);
+    if (stats != null) {
+      return stats;
+    }
+    return operations.computeIfAbsent(key, ignore -> new OperationStats());
+  }
+
+  private static String key(String service, String operation) {
+    return service + '.' + operation;
+  }
+
+  private void maybeAdapt() {
+    final long now = nanoClock.getAsLong();
+    final long start = windowStart.get();
+    // only the thread which closes the window adapts the probabilities
+    if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+      adapt(now - start);
+    }
+  }
+
+  private void adapt(long elapsedNanos) {
+    final long refill = (long) ((double) forcedTokensPerWindow * elapsedNanos / WINDOW_NANOS);
+    forcedTokens.accumulateAndGet(refill,
+        (tokens, added) -> Math.min(forcedTokensCapacity, tokens + added));
+
+    final List<OperationStats> active = new ArrayList<>();
+    double weights = 0.0;
+    for (OperationStats stats : operations.values()) {
+      stats.rate.update(stats.calls.getAndSet(0) * (double) WINDOW_NANOS / elapsedNanos);
+      stats.closeWindow();
+      if (stats.rate.get() >= MIN_ACTIVE_RATE) {
+        active.add(stats);
+        weights += stats.weight;
+      } else {
+        stats.probability = 1.0;
+      }
+    }
+
+    // weighted max-min fair split: operations below their share leave the rest of it to the
+    // others, deviating operations get a larger share but never more than the budget in total
+    active.sort(Comparator.comparingDouble(stats -> stats.rate.get() / stats.weight));
+    double remaining = targetSpansPerSecond * (1.0 - FORCED_SHARE);
+    for (OperationStats stats : active) {
+      final double rate = stats.rate.get();
+      final double allowed = Math.min(rate, remaining * stats.weight / weights);
+      remaining -= allowed;
+      weights -= stats.weight;
+      stats.probability = Math.max(minProbability, allowed / rate);
+    }
+  }
+
+  private static class OperationStats {
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong latencySum = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final Ewma rate = new Ewma(RATE_ALPHA);
+    private final Ewma baselineLatency = new Ewma(BASELINE_ALPHA);
+    private final Ewma baselineErrors = new Ewma(BASELINE_ALPHA);
+    // written by whichever thread closes the window, which changes from window to window
+    private volatile double weight = 1.0;
+    private volatile double probability = 1.0;
+
+    /**
+     * Compares the calls recorded since the last window with enough calls to the baseline and
+     * folds them into it. Without a fresh comparison, e.g. in a quiet window, the operation gets
+     * no larger share: a boost lasts only while the deviation is measured.
+     */
+    private void closeWindow() {
+      double newWeight = 1.0;
+      if (recorded.get() >= MIN_RECENT_CALLS) {
+        final long count = recorded.getAndSet(0);
+        final double latency = (double) latencySum.getAndSet(0) / count;
+        final double errorRate = (double) errors.getAndSet(0) / count;
+
+        if (baselineLatency.isSet()) {
+          final double deviation = Math.max(
+              baselineLatency.get() > 0 ? latency / baselineLatency.get() : 1.0,
+              (errorRate + ERROR_RATE_FLOOR) / (baselineErrors.get() + ERROR_RATE_FLOOR));
+          if (deviation >= DEVIATION_THRESHOLD) {
+            newWeight = Math.min(deviation, MAX_WEIGHT);
+          }
+        }
+        baselineLatency.update(latency);
+        baselineErrors.update(errorRate);
+      }
+      weight = newWeight;
+    }
+  }
+}
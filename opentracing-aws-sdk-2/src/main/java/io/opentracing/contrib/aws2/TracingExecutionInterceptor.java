@@ -15,9 +15,14 @@ package io.opentracing.contrib.aws2;
 
 import io.opentracing.Span;
 import io.opentracing.Tracer;
+import io.opentracing.tag.StringTag;
 import io.opentracing.tag.Tags;
 import java.util.HashMap;
 import java.util.Map;
+import software.amazon.awssdk.awscore.AwsExecutionAttribute;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.core.interceptor.Context.AfterExecution;
 import software.amazon.awssdk.core.interceptor.Context.AfterMarshalling;
 import software.amazon.awssdk.core.interceptor.Context.BeforeExecution;
@@ -27,26 +32,76 @@ import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
 import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
 import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
 import software.amazon.awssdk.http.SdkHttpRequest;
+import software.amazon.awssdk.regions.Region;
 
 public class TracingExecutionInterceptor implements ExecutionInterceptor {
   private static final String COMPONENT_NAME = "java-aws-sdk";
+  private static final StringTag AWS_REGION = new StringTag("aws.region");
+  private static final StringTag AWS_ENDPOINT = new StringTag("aws.endpoint");
   private static final ExecutionAttribute<Span> SPAN_ATTRIBUTE = new ExecutionAttribute<>(
       "ot-span");
+  private static final ExecutionAttribute<String> ENDPOINT_ATTRIBUTE = new ExecutionAttribute<>(
+      "ot-endpoint");
+  private static final ExecutionAttribute<Long> ENDPOINT_START_ATTRIBUTE =
+      new ExecutionAttribute<>("ot-endpoint-start-nanos");
+  private static final ExecutionAttribute<Long> START_ATTRIBUTE = new ExecutionAttribute<>(
+      "ot-start-nanos");
+  private static final ExecutionAttribute<Boolean> SAMPLED_ATTRIBUTE = new ExecutionAttribute<>(
+      "ot-sampled");
   private final Tracer tracer;
+  private final EndpointLatencyTracker latencyTracker;
+  private final AdaptiveSampler sampler;
 
   public TracingExecutionInterceptor(Tracer tracer) {
+    this(tracer, null, null);
+  }
+
+  /**
+   * @param latencyTracker tracker to record per endpoint latency and error rate to, may be null
+   */
+  public TracingExecutionInterceptor(Tracer tracer, EndpointLatencyTracker latencyTracker) {
+    this(tracer, latencyTracker, null);
+  }
+
+  /**
+   * @param latencyTracker tracker to record per endpoint latency and error rate to, may be null
+   * @param sampler sampler to set the sampling priority of spans with, may be null
+   */
+  public TracingExecutionInterceptor(Tracer tracer, EndpointLatencyTracker latencyTracker,
+      AdaptiveSampler sampler) {
     this.tracer = tracer;
+    this.latencyTracker = latencyTracker;
+    this.sampler = sampler;
   }
 
   @Override
   public void beforeExecution(BeforeExecution context, ExecutionAttributes executionAttributes) {
-    final Span span = tracer.buildSpan(context.request().getClass().getSimpleName())
+    final String serviceName = executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME);
+    final String operationName = context.request().getClass().getSimpleName();
+    final Tracer.SpanBuilder spanBuilder = tracer.buildSpan(operationName)
         .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
-        .withTag(Tags.PEER_SERVICE,
-            executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME))
-        .withTag(Tags.COMPONENT, COMPONENT_NAME).start();
+        .withTag(Tags.PEER_SERVICE, serviceName)
+        .withTag(Tags.COMPONENT, COMPONENT_NAME);
+    // sampling.priority applies to the whole trace, child spans follow the upstream decision
+    if (sampler != null && tracer.activeSpan() == null) {
+      final boolean sampled = sampler.sample(serviceName, operationName);
+      spanBuilder.withTag(Tags.SAMPLING_PRIORITY, sampled ? 1 : 0);
+      executionAttributes.putAttribute(SAMPLED_ATTRIBUTE, sampled);
+    }
+    final Span span = spanBuilder.start();
+
+    final Region region = executionAttributes.getAttribute(AwsExecutionAttribute.AWS_REGION);
+    if (region != null) {
+      span.setTag(AWS_REGION, region.id());
+    }
+    if (LambdaSpanDecorator.isInvoke(context.request())) {
+      LambdaSpanDecorator.onRequest(context.request(), span);
+    }
 
     executionAttributes.putAttribute(SPAN_ATTRIBUTE, span);
+    if (sampler != null) {
+      executionAttributes.putAttribute(START_ATTRIBUTE, System.nanoTime());
+    }
   }
 
   @Override
@@ -61,6 +116,15 @@ public class TracingExecutionInterceptor implements ExecutionInterceptor {
     if (httpRequest.port() > 0) {
       span.setTag(Tags.PEER_PORT, httpRequest.port());
     }
+
+    final String endpoint = httpRequest.port() > 0
+        ? httpRequest.host() + ":" + httpRequest.port() : httpRequest.host();
+    span.setTag(AWS_ENDPOINT, endpoint);
+    if (latencyTracker != null) {
+      // time the endpoint only, without marshalling, signing and credential resolution
+      executionAttributes.putAttribute(ENDPOINT_ATTRIBUTE, endpoint);
+      executionAttributes.putAttribute(ENDPOINT_START_ATTRIBUTE, System.nanoTime());
+    }
   }
 
   @Override
@@ -72,7 +136,12 @@ public class TracingExecutionInterceptor implements ExecutionInterceptor {
     }
 
     executionAttributes.putAttribute(SPAN_ATTRIBUTE, null);
+    recordSample(context.request(), executionAttributes, span, null);
     span.setTag(Tags.HTTP_STATUS, context.httpResponse().statusCode());
+    if (LambdaSpanDecorator.isInvoke(context.response())) {
+      LambdaSpanDecorator.onResponse(context.response(), span);
+    }
+    recordLatency(executionAttributes, null);
     span.finish();
   }
 
@@ -85,11 +154,56 @@ public class TracingExecutionInterceptor implements ExecutionInterceptor {
     }
 
     executionAttributes.putAttribute(SPAN_ATTRIBUTE, null);
+    recordSample(context.request(), executionAttributes, span, context.exception());
     Tags.ERROR.set(span, Boolean.TRUE);
     span.log(errorLogs(context.exception()));
+    recordLatency(executionAttributes, context.exception());
     span.finish();
   }
 
+  private void recordLatency(final ExecutionAttributes executionAttributes,
+      final Throwable error) {
+    final Long startNanos = executionAttributes.getAttribute(ENDPOINT_START_ATTRIBUTE);
+    if (startNanos == null) {
+      // failed before the request was marshalled, no endpoint to blame
+      return;
+    }
+    final Region region = executionAttributes.getAttribute(AwsExecutionAttribute.AWS_REGION);
+    latencyTracker.record(executionAttributes.getAttribute(ENDPOINT_ATTRIBUTE),
+        region == null ? null : region.id(), System.nanoTime() - startNanos,
+        error != null && isEndpointError(error));
+  }
+
+  /**
+   * Called before the span is decorated with the response or error: tracers may drop tags and logs
+   * of spans which are not sampled, so a call kept anyway must be marked as sampled first.
+   */
+  private void recordSample(final SdkRequest request,
+      final ExecutionAttributes executionAttributes, final Span span, final Throwable error) {
+    final Boolean sampled = executionAttributes.getAttribute(SAMPLED_ATTRIBUTE);
+    if (sampled == null) {
+      return;
+    }
+    final long latencyNanos = System.nanoTime() - executionAttributes.getAttribute(START_ATTRIBUTE);
+    // keep failed and unusually slow calls even if they were not sampled
+    if (sampler.record(executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME),
+        request.getClass().getSimpleName(), latencyNanos, error != null, sampled)) {
+      span.setTag(Tags.SAMPLING_PRIORITY, 1);
+    }
+  }
+
+  /**
+   * Failures of the client or the endpoint count against its health. Requests rejected by the
+   * service with a 4xx error, other than throttling, don't.
+   */
+  static boolean isEndpointError(final Throwable throwable) {
+    if (throwable instanceof SdkServiceException) {
+      final SdkServiceException exception = (SdkServiceException) throwable;
+      return exception.statusCode() >= 500 || exception.isThrottlingException();
+    }
+    return throwable instanceof SdkClientException;
+  }
+
   private static Map<String, Object> errorLogs(final Throwable ex) {
     Map<String, Object> errorLogs = new HashMap<>(2);
     errorLogs.put("event", Tags.ERROR.getKey());
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017-2019 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.aws2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.offset;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class AdaptiveSamplerTest {
+  private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final AtomicLong clock = new AtomicLong();
+  private final AdaptiveSampler sampler = new AdaptiveSampler(10, 0.001, clock::get);
+
+  @Test
+  public void budgetIsSharedBetweenOperations() {
+    assertThat(sampler.getProbability("DynamoDb", "GetItemRequest")).isEqualTo(1.0);
+
+    for (int i = 0; i < 5; i++) {
+      calls("GetItemRequest", 1000, MILLIS, false);
+      calls("QueryRequest", 1, 5 * MILLIS, false);
+      tick();
+    }
+    sampler.sample("DynamoDb", "QueryRequest");
+
+    // the rare operation keeps all its calls and leaves the rest of the budget, minus the share
+    // reserved for forced keeps
+    assertThat(sampler.getProbability("DynamoDb", "QueryRequest")).isEqualTo(1.0);
+    assertThat(sampler.getProbability("DynamoDb", "GetItemRequest"))
+        .isCloseTo(0.008, offset(1e-9));
+  }
+
+  @Test
+  public void slowOperationGetsALargerShare() {
+    for (int i = 0; i < 5; i++) {
+      calls("GetItemRequest", 500, MILLIS, false);
+      calls("ScanRequest", 500, MILLIS, false);
+      tick();
+    }
+    sampler.sample("DynamoDb", "GetItemRequest");
+    assertThat(sampler.getProbability("DynamoDb", "GetItemRequest"))
+        .isCloseTo(0.009, offset(1e-9));
+    assertThat(sampler.getProbability("DynamoDb", "ScanRequest"))
+        .isCloseTo(0.009, offset(1e-9));
+
+    calls("GetItemRequest", 499, 10 * MILLIS, false);
+    calls("ScanRequest", 500, MILLIS, false);
+    tick();
+    sampler.sample("DynamoDb", "GetItemRequest");
+
+    // ten times slower gets ten times the share of the other operation, within the same budget
+    final double getItem = sampler.getProbability("DynamoDb", "GetItemRequest");
+    final double scan = sampler.getProbability("DynamoDb", "ScanRequest");
+    assertThat(getItem).isCloseTo(9.0 * 10 / 11 / 500, offset(1e-9));
+    assertThat(scan).isCloseTo(9.0 / 11 / 500, offset(1e-9));
+    assertThat(getItem * 500 + scan * 500).isLessThanOrEqualTo(9.0 + 1e-9);
+  }
+
+  @Test
+  public void boostEndsInQuietWindows() {
+    for (int i = 0; i < 5; i++) {
+      calls("GetItemRequest", 500, MILLIS, false);
+      calls("ScanRequest", 500, MILLIS, false);
+      tick();
+    }
+    calls("GetItemRequest", 500, 10 * MILLIS, false);
+    calls("ScanRequest", 500, MILLIS, false);
+    tick();
+
+    // too few calls to compare with the baseline, still slow
+    calls("GetItemRequest", 10, 10 * MILLIS, false);
+    calls("ScanRequest", 500, MILLIS, false);
+    assertThat(sampler.getProbability("DynamoDb", "GetItemRequest"))
+        .isCloseTo(9.0 * 10 / 11 / 500, offset(1e-9));
+    tick();
+    sampler.sample("DynamoDb", "ScanRequest");
+
+    // both get an even share again, the quiet operation's rate is 0.3 * 10 + 0.7 * 500
+    assertThat(sampler.getProbability("DynamoDb", "GetItemRequest"))
+        .isCloseTo(4.5 / 353, offset(1e-9));
+    assertThat(sampler.getProbability("DynamoDb", "ScanRequest"))
+        .isCloseTo(0.009, offset(1e-9));
+  }
+
+  @Test
+  public void shortSpikesAreNotBoosted() {
+    for (int i = 0; i < 5; i++) {
+      calls("GetItemRequest", 500, MILLIS, false);
+      calls("ScanRequest", 500, MILLIS, false);
+      tick();
+    }
+
+    // a few failed and slow calls at the end of an otherwise normal window
+    calls("GetItemRequest", 485, MILLIS, false);
+    calls("GetItemRequest", 5, MILLIS, true);
+    calls("GetItemRequest", 10, 10 * MILLIS, false);
+    calls("ScanRequest", 500, MILLIS, false);
+    tick();
+    sampler.sample("DynamoDb", "GetItemRequest");
+
+    assertThat(sampler.getProbability("DynamoDb", "GetItemRequest"))
+        .isCloseTo(0.009, offset(1e-9));
+    assertThat(sampler.getProbability("DynamoDb", "ScanRequest"))
+        .isCloseTo(0.009, offset(1e-9));
+  }
+
+  @Test
+  public void forcedKeepsAreLimited() {
+    for (int i = 0; i < 5; i++) {
+      calls("GetItemRequest", 1000, MILLIS, false);
+      tick();
+    }
+
+    assertThat(sampler.record("DynamoDb", "GetItemRequest", MILLIS, false, false)).isFalse();
+    assertThat(sampler.record("DynamoDb", "GetItemRequest", 10 * MILLIS, false, true)).isFalse();
+    // 10% of a budget of 10 spans per second leaves room for one forced keep
+    assertThat(sampler.record("DynamoDb", "GetItemRequest", 10 * MILLIS, false, false)).isTrue();
+    assertThat(sampler.record("DynamoDb", "GetItemRequest", MILLIS, true, false)).isFalse();
+
+    tick();
+    sampler.sample("DynamoDb", "GetItemRequest");
+    assertThat(sampler.record("DynamoDb", "GetItemRequest", MILLIS, true, false)).isTrue();
+  }
+
+  @Test
+  public void invalidTarget() {
+    assertThatThrownBy(() -> new AdaptiveSampler(0))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new AdaptiveSampler(Double.NaN))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void invalidMinProbability() {
+    assertThatThrownBy(() -> new AdaptiveSampler(10, -0.1))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> new AdaptiveSampler(10, 1.5))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private void calls(final String operation, final int count, final long latencyNanos,
+      final boolean error) {
+    for (int i = 0; i < count; i++) {
+      sampler.sample("DynamoDb", operation);
+      sampler.record("DynamoDb", operation, latencyNanos, error, true);
+    }
+  }
+
+  private void tick() {
+    clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+  }
+}
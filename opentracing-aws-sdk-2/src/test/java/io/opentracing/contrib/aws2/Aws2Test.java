@@ -15,6 +15,7 @@ package io.opentracing.contrib.aws2;
 
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
@@ -23,6 +24,7 @@ import com.amazonaws.services.dynamodbv2.local.server.DynamoDBProxyServer;
 import io.opentracing.Scope;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
+import io.opentracing.tag.Tags;
 import java.net.URI;
 import java.time.Duration;
 import java.util.List;
@@ -34,7 +36,11 @@ import org.junit.Before;
 import org.junit.Test;
 import software.amazon.awssdk.auth.credentials.AwsSessionCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
 import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -44,6 +50,7 @@ import software.amazon.awssdk.services.dynamodb.model.CreateTableResponse;
 import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
 import software.amazon.awssdk.services.dynamodb.model.KeyType;
 import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughput;
+import software.amazon.awssdk.services.dynamodb.model.ResourceInUseException;
 
 public class Aws2Test {
   private static final MockTracer tracer = new MockTracer();
@@ -77,6 +84,94 @@ public class Aws2Test {
     assertNull(tracer.activeSpan());
   }
 
+  @Test
+  public void endpointLatency() {
+    final EndpointLatencyTracker latencyTracker = new EndpointLatencyTracker();
+    final DynamoDbClient dbClient = buildClient(
+        new TracingExecutionInterceptor(tracer, latencyTracker));
+    createTable(dbClient, "table-" + ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE));
+
+    final List<MockSpan> spans = tracer.finishedSpans();
+    assertEquals(1, spans.size());
+    assertEquals("localhost:8000", spans.get(0).tags().get("aws.endpoint"));
+    assertEquals("us-west-2", spans.get(0).tags().get("aws.region"));
+
+    final EndpointStats stats = latencyTracker.getStats("localhost:8000");
+    assertEquals(1, stats.getCount());
+    assertEquals("us-west-2", stats.getRegion());
+    assertThat(stats.getLatencyMillis()).isPositive();
+    assertThat(stats.getErrorRate()).isZero();
+    assertThat(latencyTracker.rankedEndpoints()).containsExactly(stats);
+  }
+
+  @Test
+  public void endpointErrors() {
+    assertThat(TracingExecutionInterceptor.isEndpointError(
+        SdkServiceException.builder().statusCode(400).build())).isFalse();
+    assertThat(TracingExecutionInterceptor.isEndpointError(
+        SdkServiceException.builder().statusCode(503).build())).isTrue();
+    assertThat(TracingExecutionInterceptor.isEndpointError(AwsServiceException.builder()
+        .statusCode(400)
+        .awsErrorDetails(AwsErrorDetails.builder().errorCode("ThrottlingException").build())
+        .build())).isTrue();
+    assertThat(TracingExecutionInterceptor.isEndpointError(
+        SdkClientException.create("connection refused"))).isTrue();
+    assertThat(TracingExecutionInterceptor.isEndpointError(new IllegalStateException()))
+        .isFalse();
+  }
+
+  @Test
+  public void adaptiveSampling() {
+    final DynamoDbClient dbClient = buildClient(
+        new TracingExecutionInterceptor(tracer, null, new AdaptiveSampler(1000)));
+    createTable(dbClient, "table-" + ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE));
+
+    final List<MockSpan> spans = tracer.finishedSpans();
+    assertEquals(1, spans.size());
+    assertEquals(1, spans.get(0).tags().get(Tags.SAMPLING_PRIORITY.getKey()));
+  }
+
+  @Test
+  public void adaptiveSamplingWithParent() {
+    final DynamoDbClient dbClient = buildClient(
+        new TracingExecutionInterceptor(tracer, null, new AdaptiveSampler(1000)));
+
+    final MockSpan parent = tracer.buildSpan("parent").start();
+    try (Scope ignore = tracer.activateSpan(parent)) {
+      createTable(dbClient, "table-" + ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE));
+    }
+    parent.finish();
+
+    final List<MockSpan> spans = tracer.finishedSpans();
+    assertEquals(2, spans.size());
+    assertNull(spans.get(0).tags().get(Tags.SAMPLING_PRIORITY.getKey()));
+  }
+
+  @Test
+  public void adaptiveSamplingKeepsFailedCalls() {
+    final AdaptiveSampler sampler = new AdaptiveSampler(1000) {
+      @Override
+      public boolean sample(final String service, final String operation) {
+        return false;
+      }
+    };
+    final DynamoDbClient dbClient = buildClient(
+        new TracingExecutionInterceptor(new SamplingTracer(tracer), null, sampler));
+    final String tableName = "table-" + ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+    createTable(dbClient, tableName);
+    assertThatThrownBy(() -> createTable(dbClient, tableName))
+        .isInstanceOf(ResourceInUseException.class);
+
+    final List<MockSpan> spans = tracer.finishedSpans();
+    assertEquals(2, spans.size());
+    assertEquals(0, spans.get(0).tags().get(Tags.SAMPLING_PRIORITY.getKey()));
+    assertNull(spans.get(0).tags().get(Tags.HTTP_STATUS.getKey()));
+    // the failed call is kept before the error is tagged, so the error is not dropped
+    assertEquals(1, spans.get(1).tags().get(Tags.SAMPLING_PRIORITY.getKey()));
+    assertEquals(Boolean.TRUE, spans.get(1).tags().get(Tags.ERROR.getKey()));
+    assertEquals(1, spans.get(1).logEntries().size());
+  }
+
   @Test
   public void twoRequestsWithParent() {
     final DynamoDbClient dbClient = buildClient();
@@ -122,6 +217,10 @@ public class Aws2Test {
   }
 
   private static DynamoDbClient buildClient() {
+    return buildClient(new TracingExecutionInterceptor(tracer));
+  }
+
+  private static DynamoDbClient buildClient(final TracingExecutionInterceptor interceptor) {
     final AwsSessionCredentials awsCreds = AwsSessionCredentials
         .create("access_key_id", "secret_key_id", "session_token");
     return DynamoDbClient
@@ -132,8 +231,7 @@ public class Aws2Test {
         .overrideConfiguration(
             ClientOverrideConfiguration.builder().apiCallTimeout(Duration.ofSeconds(1)).build())
         .overrideConfiguration(
-            builder -> builder.addExecutionInterceptor(new TracingExecutionInterceptor(
-                tracer)))
+            builder -> builder.addExecutionInterceptor(interceptor))
         .build();
   }
 
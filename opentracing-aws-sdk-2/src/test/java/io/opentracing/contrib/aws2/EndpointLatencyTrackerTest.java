@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017-2019 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.aws2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class EndpointLatencyTrackerTest {
+  private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final AtomicLong clock = new AtomicLong(1_000_000L);
+  private final EndpointLatencyTracker latencyTracker =
+      new EndpointLatencyTracker(EndpointLatencyTracker.DEFAULT_ALPHA, 60_000L, clock::get);
+
+  @Test
+  public void ranksByScore() {
+    latencyTracker.record("fast:443", "us-east-1", 10 * MILLIS, false);
+    latencyTracker.record("slow:443", "us-west-2", 50 * MILLIS, false);
+    latencyTracker.record("failing:443", "eu-west-1", 10 * MILLIS, true);
+
+    final EndpointStats fast = latencyTracker.getStats("fast:443");
+    assertThat(fast.getLastUpdatedMillis()).isEqualTo(clock.get());
+    assertThat(latencyTracker.rankedEndpoints()).containsExactly(fast,
+        latencyTracker.getStats("slow:443"), latencyTracker.getStats("failing:443"));
+  }
+
+  @Test
+  public void staleEndpointsAreRankedLast() {
+    latencyTracker.record("bad:443", "us-east-1", 10 * MILLIS, true);
+    clock.addAndGet(1000L);
+    latencyTracker.record("old:443", "us-east-1", MILLIS, false);
+    clock.addAndGet(30_000L);
+    latencyTracker.record("good:443", "us-west-2", 50 * MILLIS, false);
+
+    final EndpointStats bad = latencyTracker.getStats("bad:443");
+    final EndpointStats old = latencyTracker.getStats("old:443");
+    final EndpointStats good = latencyTracker.getStats("good:443");
+    assertThat(latencyTracker.rankedEndpoints()).containsExactly(old, good, bad);
+
+    // no more traffic to bad and old, e.g. after routing away from them
+    clock.addAndGet(45_000L);
+    assertThat(latencyTracker.isStale(bad)).isTrue();
+    assertThat(latencyTracker.isStale(old)).isTrue();
+    assertThat(latencyTracker.isStale(good)).isFalse();
+    // least recently updated first, regardless of the score
+    assertThat(latencyTracker.rankedEndpoints()).containsExactly(good, bad, old);
+
+    // a new request makes the endpoint fresh and its score count again
+    latencyTracker.record("bad:443", "us-east-1", 5 * MILLIS, false);
+    assertThat(latencyTracker.isStale(bad)).isFalse();
+    assertThat(latencyTracker.rankedEndpoints()).containsExactly(bad, good, old);
+  }
+
+  @Test
+  public void invalidMaxAge() {
+    assertThatThrownBy(
+        () -> new EndpointLatencyTracker(EndpointLatencyTracker.DEFAULT_ALPHA, 0))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017-2019 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.contrib.aws2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.tag.Tags;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import org.junit.Test;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.InterceptorContext;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.http.SdkHttpMethod;
+import software.amazon.awssdk.http.SdkHttpRequest;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.lambda.model.InvocationType;
+import software.amazon.awssdk.services.lambda.model.InvokeRequest;
+import software.amazon.awssdk.services.lambda.model.InvokeResponse;
+import software.amazon.awssdk.services.lambda.model.ListFunctionsRequest;
+import software.amazon.awssdk.services.lambda.model.ListFunctionsResponse;
+
+public class LambdaSpanDecoratorTest {
+  private static final String REPORT = "START RequestId: 1 Version: $LATEST\n"
+      + "END RequestId: 1\n"
+      + "REPORT RequestId: 1\tDuration: 12.34 ms\tBilled Duration: 100 ms\t"
+      + "Memory Size: 128 MB\tMax Memory Used: 70 MB\t\n";
+
+  private final MockTracer tracer = new MockTracer();
+
+  @Test
+  public void invoke() {
+    final InvokeRequest request = InvokeRequest.builder()
+        .functionName("function")
+        .invocationType(InvocationType.REQUEST_RESPONSE)
+        .payload(SdkBytes.fromUtf8String("{\"key\":1}"))
+        .build();
+    final InvokeResponse response = InvokeResponse.builder()
+        .statusCode(200)
+        .executedVersion("1")
+        .payload(SdkBytes.fromUtf8String("{}"))
+        .logResult(Base64.getEncoder().encodeToString(REPORT.getBytes(StandardCharsets.UTF_8)))
+        .build();
+    assertThat(LambdaSpanDecorator.isInvoke(request)).isTrue();
+    assertThat(LambdaSpanDecorator.isInvoke(response)).isTrue();
+
+    final MockSpan span = tracer.buildSpan("invoke").start();
+    LambdaSpanDecorator.onRequest(request, span);
+    LambdaSpanDecorator.onResponse(response, span);
+    span.finish();
+
+    assertThat(span.tags())
+        .containsEntry("aws.lambda.function_name", "function")
+        .containsEntry("aws.lambda.invocation_type", "RequestResponse")
+        .containsEntry("aws.lambda.request_payload_size", 9)
+        .containsEntry("aws.lambda.response_payload_size", 2)
+        .containsEntry("aws.lambda.status_code", 200)
+        .containsEntry("aws.lambda.executed_version", "1")
+        .containsEntry("aws.lambda.duration_ms", 12.34)
+        .containsEntry("aws.lambda.billed_duration_ms", 100.0)
+        .containsEntry("aws.lambda.max_memory_used_mb", 70.0)
+        .containsEntry("aws.lambda.cold_start", false)
+        .doesNotContainKeys(Tags.ERROR.getKey(), "aws.lambda.function_error",
+            "aws.lambda.init_duration_ms");
+  }
+
+  @Test
+  public void functionError() {
+    final MockSpan span = tracer.buildSpan("invoke").start();
+    LambdaSpanDecorator.onResponse(InvokeResponse.builder()
+        .statusCode(200)
+        .functionError("Unhandled")
+        .build(), span);
+    span.finish();
+
+    assertThat(span.tags())
+        .containsEntry("aws.lambda.function_error", "Unhandled")
+        .containsEntry(Tags.ERROR.getKey(), true)
+        .containsEntry("aws.lambda.response_payload_size", 0);
+  }
+
+  @Test
+  public void invokeThroughInterceptor() {
+    final MockSpan span = execute(
+        InvokeRequest.builder()
+            .functionName("function")
+            .invocationType(InvocationType.EVENT)
+            .payload(SdkBytes.fromUtf8String("{}"))
+            .build(),
+        InvokeResponse.builder().statusCode(202).build());
+
+    assertThat(span.operationName()).isEqualTo("InvokeRequest");
+    assertThat(span.tags())
+        .containsEntry("aws.lambda.function_name", "function")
+        .containsEntry("aws.lambda.invocation_type", "Event")
+        .containsEntry("aws.lambda.request_payload_size", 2)
+        .containsEntry("aws.lambda.response_payload_size", 0)
+        .containsEntry("aws.lambda.status_code", 202);
+  }
+
+  @Test
+  public void otherRequestThroughInterceptor() {
+    final MockSpan span = execute(ListFunctionsRequest.builder().build(),
+        ListFunctionsResponse.builder().build());
+
+    assertThat(span.operationName()).isEqualTo("ListFunctionsRequest");
+    assertThat(span.tags().keySet()).noneMatch(key -> key.startsWith("aws.lambda."));
+  }
+
+  private MockSpan execute(final SdkRequest request, final SdkResponse response) {
+    final InterceptorContext context = InterceptorContext.builder()
+        .request(request)
+        .httpRequest(SdkHttpRequest.builder()
+            .protocol("https")
+            .host("lambda.us-west-2.amazonaws.com")
+            .method(SdkHttpMethod.POST)
+            .build())
+        .response(response)
+        .httpResponse(SdkHttpResponse.builder().statusCode(200).build())
+        .build();
+    final ExecutionAttributes executionAttributes = new ExecutionAttributes();
+    executionAttributes.putAttribute(SdkExecutionAttribute.SERVICE_NAME, "Lambda");
+
+    final TracingExecutionInterceptor interceptor = new TracingExecutionInterceptor(tracer);
+    interceptor.beforeExecution(context, executionAttributes);
+    interceptor.afterMarshalling(context, executionAttributes);
+    interceptor.afterExecution(context, executionAttributes);
+
+    final List<MockSpan> spans = tracer.finishedSpans();
+    assertThat(spans).hasSize(1);
+    return spans.get(0);
+  }
+}